@@ -0,0 +1,26 @@
+/**
+ * What a plan minimizes.
+ * CELLS: the number of single cell moves, i.e. the total number of cells all
+ * vehicles slide. This is the default.
+ * VEHICLES: the number of different vehicles that move. Moving a vehicle again
+ * costs nothing.
+ */
+public enum CostModel {
+    CELLS, VEHICLES;
+
+    /**
+     * Parses a cost model written as cells or vehicles, in any case.
+     * 
+     * @param text The cost model description.
+     * @return The cost model.
+     */
+    public static CostModel parse(String text) {
+        if (text.equalsIgnoreCase("cells")) {
+            return CELLS;
+        }
+        if (text.equalsIgnoreCase("vehicles")) {
+            return VEHICLES;
+        }
+        throw new IllegalArgumentException("cost must be cells or vehicles");
+    }
+}
@@ -4,8 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.HashSet;
 import java.util.Scanner;
 import java.util.Stack;
 
@@ -23,10 +22,63 @@ public class GameBoard {
     GameState finalGameState;
     boolean canEscape = false;
     private HashMap<HashKey, GameState> map = new HashMap<>();
+    /**
+     * Every state found by the current search, by index. A search goes layer by
+     * layer, so each layer is a contiguous range of indices.
+     */
+    private ArrayList<GameState> states = new ArrayList<>();
+    /**
+     * The BFS frontier: the indices of the states of the layer being expanded
+     * and of the layer being found, with the number of shortest paths to each
+     * of them. The arrays are swapped after every layer and kept between
+     * searches. A move that costs nothing adds its state to the current layer.
+     */
+    private int[] currentLayer = new int[1024];
+    private long[] currentCounts = new long[1024];
+    private int[] nextLayer = new int[1024];
+    private long[] nextCounts = new long[1024];
+    /**
+     * The number of shortest paths found by the last search.
+     */
+    private long numOfPaths;
+    private Goal goal = Goal.TRUCK_ESCAPES;
+    private CostModel costModel = CostModel.CELLS;
+    /**
+     * Distances to the goal shared with other solves of the same family, or
+     * null.
+     */
+    private TranspositionTable table;
+    /**
+     * The states of the last search found in the table on the shortest plans
+     * through known states so far, and their entries.
+     */
+    private ArrayList<GameState> knownLeaves = new ArrayList<>();
+    private ArrayList<TranspositionTable.Entry> knownEntries = new ArrayList<>();
+    /**
+     * The length of the shortest plan through a known state, or
+     * Integer.MAX_VALUE.
+     */
+    private int bestKnown;
+    /**
+     * The index of the first state of each layer of the last search.
+     */
+    private ArrayList<Integer> layerStarts = new ArrayList<>();
 
+    /**
+     * Usage: java GameBoard [--goal vehicles:locations] [--cost cells|vehicles] [file]
+     */
     public static void main(String[] args) throws Exception {
         GameBoard gameBoard = new GameBoard();
         String fileName = "src\\21.txt";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--goal") && i + 1 < args.length) {
+                gameBoard.setGoal(Goal.parse(args[++i]));
+            } else if (args[i].equals("--cost") && i + 1 < args.length) {
+                gameBoard.setCostModel(CostModel.parse(args[++i]));
+            } else {
+                fileName = args[i];
+            }
+        }
         gameBoard.readInput(fileName);
         ArrayList<Pair> path = gameBoard.getPlan();
 
@@ -56,38 +108,119 @@ public class GameBoard {
      * @throws IOException If there's an error reading the file.
      */
     public void readInput(String FileName) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(FileName))) {
+            setVehicles(readVehicles(reader));
+        }
+    }
+
+    /**
+     * Reads the vehicles of a game setup in the input format, for example from
+     * the body of a request.
+     *
+     * @param reader The game setup.
+     * @return The vehicles, numbered in the order they are read.
+     * @throws IOException If there's an error reading or the setup is not a
+     *                     valid board: every vehicle has to cover consecutive
+     *                     cells of one row or column, listed from west or
+     *                     north, and no cell may be covered twice.
+     */
+    public static ArrayList<Vehicle> readVehicles(BufferedReader reader) throws IOException {
         // Long timeStart; // to test the time
         // Long timeEnd;
-        try (BufferedReader reader = new BufferedReader(new FileReader(FileName))) {
-            int numVehicles = Integer.parseInt(reader.readLine().trim());
-            ArrayList<Vehicle> vehicles = new ArrayList<>(numVehicles);
-
-            String line;
-            // Scanner scanner;
-            Vehicle vehicle;
-            String[] strEl;
-            for (int i = 0; i < numVehicles; i++) {
-                line = reader.readLine();
-                // timeStart = System.nanoTime(); // to test the time
-                strEl = line.trim().split("\\s+");
-                // if (i == 0) { // // to test the time
-                // timeEnd = System.nanoTime();
-                // System.out.println(timeEnd - timeStart);
-                // }
-                vehicle = new Vehicle();
-                vehicle.setID(i);
-                for (int j = 0; j < strEl.length; j++) {
-                    vehicle.addLocation(Integer.parseInt(strEl[j]));
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("Missing the number of vehicles");
+        }
+        int numVehicles;
+        try {
+            numVehicles = Integer.parseInt(line.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number of vehicles: " + line);
+        }
+        ArrayList<Vehicle> vehicles = new ArrayList<>();
+        boolean[] occupied = new boolean[36];
+
+        // Scanner scanner;
+        String[] strEl;
+        int[] locations;
+        for (int i = 0; i < numVehicles; i++) {
+            line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Missing the locations of vehicle " + i);
+            }
+            // timeStart = System.nanoTime(); // to test the time
+            strEl = line.trim().split("\\s+");
+            // if (i == 0) { // // to test the time
+            // timeEnd = System.nanoTime();
+            // System.out.println(timeEnd - timeStart);
+            // }
+            if (strEl.length < 2) {
+                throw new IOException("Vehicle " + i + " needs at least two locations");
+            }
+            locations = new int[strEl.length];
+            for (int j = 0; j < strEl.length; j++) {
+                try {
+                    locations[j] = Integer.parseInt(strEl[j]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid location of vehicle " + i + ": " + strEl[j]);
+                }
+                if (locations[j] < 1 || locations[j] > 36) {
+                    throw new IOException("Invalid location of vehicle " + i + ": " + locations[j]);
                 }
-                if ((vehicle.getLocationAt(0) - vehicle.getLocationAt(1)) % 6 == 0) { // vertical:0 horizontal:1
-                    vehicle.setDirection(0);
-                } else {
-                    vehicle.setDirection(1);
+            }
+            // the locations have to be a straight line from north or west, within one row if horizontal
+            int step = locations[1] - locations[0];
+            int last = locations[locations.length - 1];
+            boolean straight = step == 6 || (step == 1 && (locations[0] - 1) / 6 == (last - 1) / 6);
+            for (int j = 2; j < locations.length; j++) {
+                straight &= locations[j] - locations[j - 1] == step;
+            }
+            if (!straight) {
+                throw new IOException("Vehicle " + i + " is not a row or column listed from west or north: " + line);
+            }
+            Vehicle vehicle = new Vehicle(i, locations); // vertical:0 horizontal:1
+            for (int location : vehicle.getAllLocations()) {
+                if (occupied[location - 1]) {
+                    throw new IOException("Taken location of vehicle " + i + ": " + location);
                 }
-                vehicles.add(vehicle);
+                occupied[location - 1] = true;
             }
-            initialGameState = new GameState(vehicles, 0, null, 1);
+            vehicles.add(vehicle);
         }
+        return vehicles;
+    }
+
+    /**
+     * Writes the given vehicles in the format read by readInput().
+     *
+     * @param vehicles The vehicles of a board.
+     * @return The board as text.
+     */
+    public static String toInputFormat(ArrayList<Vehicle> vehicles) {
+        StringBuilder output = new StringBuilder();
+        output.append(vehicles.size()).append('\n');
+        for (Vehicle vehicle : vehicles) {
+            for (int i = 0; i < vehicle.getLength(); i++) {
+                output.append(i == 0 ? "" : " ").append(vehicle.getLocationAt(i));
+            }
+            output.append('\n');
+        }
+        return output.toString();
+    }
+
+    /**
+     * Initializes the game board from an already built list of vehicles, for
+     * callers such as the puzzle generator that do not go through a file. Any
+     * result of a previous search is discarded, so one GameBoard can be reused
+     * for many puzzles.
+     *
+     * @param vehicles The vehicles of the new puzzle. Vehicle 0 is the truck.
+     */
+    public void setVehicles(ArrayList<Vehicle> vehicles) {
+        finalGameState = null;
+        canEscape = false;
+        map.clear();
+        initialGameState = new GameState(vehicles, 0, null, 1);
     }
 
     /**
@@ -105,77 +238,407 @@ public class GameBoard {
      *         possible.
      */
     public ArrayList<Pair> getPlan() {
-        Queue<GameState> queue = new LinkedList<GameState>();
+        clearSearch();
+        finalGameState = null;
+        canEscape = false;
+        numOfPaths = 0;
+        // when counting vehicles, a move of a vehicle that has already moved is free and stays in the layer
+        boolean countVehicles = costModel == CostModel.VEHICLES;
+        HashSet<Integer> goalVehicleSets = new HashSet<>();
+        // the table only knows distances in single cell moves
+        TranspositionTable knownStates = countVehicles ? null : table;
+        if (knownStates != null
+                && !knownStates.getFamily().equals(TranspositionTable.familyOf(initialGameState.getVehicles(), goal))) {
+            throw new IllegalArgumentException("The board is not of the family of the transposition table");
+        }
+        knownLeaves.clear();
+        knownEntries.clear();
+        bestKnown = Integer.MAX_VALUE;
+        layerStarts.clear();
+        layerStarts.add(0);
+        int layer = 0;
+        int goalLayer = Integer.MAX_VALUE;
 
         // Long timeStart;
         // Long timeEnd;
-        queue.add(initialGameState);
-        map.put(initialGameState.getHashKey(), initialGameState);
+        addState(initialGameState, keyOf(initialGameState), -1);
+        currentLayer[0] = initialGameState.getIndex();
+        currentCounts[0] = initialGameState.getNumShortestPaths();
+        int currentSize = 1;
         GameState visitedGameState;
-        while (!queue.isEmpty()) {
-            visitedGameState = queue.remove();
-            if (visitedGameState.escaped() == true) {
-                finalGameState = visitedGameState;
-                canEscape = true;
-                break;
-            }
-            // timeStart = System.nanoTime();
-            ArrayList<GameState> neighbors = visitedGameState.getNeighbors();
-            // timeEnd = System.nanoTime();
-            // System.out.println(timeEnd - timeStart);
-            for (GameState neighbor : neighbors) {
-                HashKey neighborsHashKey = neighbor.getHashKey();
-                if (map.containsKey(neighborsHashKey)) {
+        while (currentSize > 0 && !canEscape && layer <= bestKnown) {
+            // the next layer gets the indices from nextStart on, in the order of nextLayer
+            int nextStart = states.size();
+            int nextSize = 0;
+            for (int i = 0; i < currentSize; i++) {
+                visitedGameState = states.get(currentLayer[i]);
+                visitedGameState.setNumShortestPaths(currentCounts[i]);
+                if (goal.reached(visitedGameState.getGrid())) {
+                    if (!canEscape) {
+                        finalGameState = visitedGameState;
+                        canEscape = true;
+                        goalLayer = layer;
+                    }
+                    numOfPaths += currentCounts[i];
+                    goalVehicleSets.add(visitedGameState.getMovedVehicles());
+                } else if (knownStates != null && isKnown(knownStates, visitedGameState, layer)) {
+                    // the plans through a known state are already counted, so it is not expanded
+                    continue;
+                }
+                if ((canEscape && !countVehicles) || layer + 1 > bestKnown) {
+                    // the rest of the layer is only checked for more goal states
+                    continue;
+                }
+                // timeStart = System.nanoTime();
+                ArrayList<GameState> neighbors = visitedGameState.getNeighbors();
+                // timeEnd = System.nanoTime();
+                // System.out.println(timeEnd - timeStart);
+                for (GameState neighbor : neighbors) {
+                    boolean free = countVehicles && visitedGameState.hasMoved(neighbor.getPathPair().getId());
+                    if (canEscape && !free) {
+                        continue;
+                    }
+                    HashKey neighborsHashKey = keyOf(neighbor);
                     GameState sameGameState = map.get(neighborsHashKey);
-                    if (sameGameState.getLayer() == neighbor.getLayer()) {
-                        sameGameState.setNumShortestPaths(
-                                sameGameState.getNumShortestPaths() + neighbor.getNumShortestPaths());
+                    if (sameGameState == null) {
+                        addState(neighbor, neighborsHashKey, visitedGameState.getIndex());
+                        if (Math.max(currentSize, nextSize) == nextLayer.length) {
+                            growLayers();
+                        }
+                        if (free) {
+                            currentLayer[currentSize] = neighbor.getIndex();
+                            currentCounts[currentSize] = currentCounts[i];
+                            currentSize++;
+                        } else {
+                            nextLayer[nextSize] = neighbor.getIndex();
+                            nextCounts[nextSize] = currentCounts[i];
+                            nextSize++;
+                        }
+                    } else if (!countVehicles && sameGameState.getIndex() >= nextStart) {
+                        // another shortest path to a state of the next layer
+                        nextCounts[sameGameState.getIndex() - nextStart] += currentCounts[i];
                     }
-                } else {
-                    map.put(neighborsHashKey, neighbor);
-                    queue.add(neighbor);
                 }
             }
+            swapLayers();
+            currentSize = nextSize;
+            layerStarts.add(nextStart);
+            layer++;
+        }
+        if (countVehicles) {
+            numOfPaths = goalVehicleSets.size();
+        }
+        if (knownStates == null) {
+            return canEscape ? backtrack(finalGameState) : new ArrayList<Pair>();
+        }
+
+        // combine the plans that reach the goal in the search with those through known states
+        int best = Math.min(goalLayer, bestKnown);
+        if (best == Integer.MAX_VALUE) {
+            return new ArrayList<Pair>();
+        }
+        if (goalLayer > best) {
+            numOfPaths = 0;
+        }
+        if (bestKnown == best) {
+            for (int i = 0; i < knownLeaves.size(); i++) {
+                numOfPaths += knownLeaves.get(i).getNumShortestPaths() * knownEntries.get(i).paths;
+            }
         }
+        storeKnownDistances(knownStates, best, goalLayer == best);
+
+        ArrayList<Pair> plans;
+        if (goalLayer == best) {
+            plans = backtrack(finalGameState);
+        } else {
+            plans = backtrack(knownLeaves.get(0));
+            plans.addAll(followKnownMoves(knownStates, knownLeaves.get(0), knownEntries.get(0)));
+            canEscape = true;
+        }
+        return plans;
+    }
+
+    /**
+     * Returns the moves that lead from the initial state to the given state.
+     *
+     * @param gameState A state found by the last search.
+     * @return The moves in order.
+     */
+    private ArrayList<Pair> backtrack(GameState gameState) {
         Stack<Pair> escapedPaths = new Stack<Pair>();
         ArrayList<Pair> plans = new ArrayList<Pair>(); // the plans
-        // backtrack the map
-        if (canEscape) {
-            GameState current = finalGameState;
-            Pair pair;
-            Pair reversedPair;
-            while (current.getPathPair() != null) {
-                pair = current.getPathPair();
-                escapedPaths.push(pair); // adding the moves
-
-                // An edge is a pair/move. So Move backwards
-                reversedPair = pair.reverse();
-                current = new GameState(current, reversedPair);
-                current = map.get(current.getHashKey());
+        // backtrack through the states that found each other
+        GameState current = gameState;
+        while (current.getPathPair() != null) {
+            escapedPaths.push(current.getPathPair()); // adding the moves
+            current = states.get(current.getParentIndex());
+        }
+
+        int size = escapedPaths.size();
+        for (int i = 0; i < size; i++) {
+            plans.add(escapedPaths.pop());
+        }
+        return plans;
+    }
+
+    /**
+     * Looks up a state of the given layer in the transposition table. If it is
+     * known and no longer plan has been found through a known state yet, it is
+     * remembered as the end of the search along this path.
+     *
+     * @return True if the state is known.
+     */
+    private boolean isKnown(TranspositionTable knownStates, GameState gameState, int layer) {
+        TranspositionTable.Entry known = knownStates.get(gameState.getHashKey());
+        if (known == null) {
+            return false;
+        }
+        if (layer + known.distance < bestKnown) {
+            bestKnown = layer + known.distance;
+            knownLeaves.clear();
+            knownEntries.clear();
+        }
+        if (layer + known.distance == bestKnown) {
+            knownLeaves.add(gameState);
+            knownEntries.add(known);
+        }
+        return true;
+    }
+
+    /**
+     * Follows the first moves stored in the transposition table from a known
+     * state to the goal. If a state on the way has been evicted meanwhile, the
+     * rest of the plan is searched without the table. Sets finalGameState.
+     *
+     * @return The moves in order.
+     */
+    private ArrayList<Pair> followKnownMoves(TranspositionTable knownStates, GameState from,
+            TranspositionTable.Entry entry) {
+        ArrayList<Pair> moves = new ArrayList<Pair>();
+        GameState current = from;
+        while (entry.next != null) {
+            moves.add(entry.next);
+            current = new GameState(current, entry.next);
+            entry = knownStates.get(current.getHashKey());
+            if (entry == null) {
+                GameBoard rest = new GameBoard();
+                rest.setGoal(goal);
+                rest.setVehicles(current.getVehicles());
+                moves.addAll(rest.getPlan());
+                current = rest.finalGameState;
+                break;
             }
+        }
+        finalGameState = current;
+        return moves;
+    }
 
-            int size = escapedPaths.size();
-            for (int i = 0; i < size; i++) {
-                plans.add(escapedPaths.pop());
+    /**
+     * Adds every state on a shortest plan of the last search to the
+     * transposition table. The number of shortest plans from each state is
+     * counted backwards from the goal states and the known states on a shortest
+     * plan, one layer at a time, the same way the search counts them forwards.
+     *
+     * @param best        The length of the shortest plans.
+     * @param goalsOnBest True if the search found goal states in layer best.
+     */
+    private void storeKnownDistances(TranspositionTable knownStates, int best, boolean goalsOnBest) {
+        long[] pathsToGoal = new long[states.size()];
+        Pair[] nextMoves = new Pair[states.size()];
+        boolean[] known = new boolean[states.size()];
+        for (int i = 0; i < knownLeaves.size(); i++) {
+            int index = knownLeaves.get(i).getIndex();
+            known[index] = true;
+            if (bestKnown == best) {
+                pathsToGoal[index] = knownEntries.get(i).paths;
+            }
+        }
+        if (goalsOnBest) {
+            for (int index = layerStart(best); index < layerStart(best + 1); index++) {
+                if (goal.reached(states.get(index).getGrid())) {
+                    pathsToGoal[index] = 1;
+                }
             }
-            return plans;
         }
-        return plans;
 
+        for (int layer = best; layer > 0; layer--) {
+            int previousStart = layerStart(layer - 1);
+            for (int index = layerStart(layer); index < layerStart(layer + 1); index++) {
+                if (pathsToGoal[index] == 0) {
+                    continue;
+                }
+                for (GameState neighbor : states.get(index).getNeighbors()) {
+                    GameState previous = map.get(neighbor.getHashKey());
+                    if (previous == null || previous.getIndex() < previousStart
+                            || previous.getIndex() >= layerStart(layer) || known[previous.getIndex()]) {
+                        continue;
+                    }
+                    pathsToGoal[previous.getIndex()] += pathsToGoal[index];
+                    if (nextMoves[previous.getIndex()] == null) {
+                        nextMoves[previous.getIndex()] = neighbor.getPathPair().reverse();
+                    }
+                }
+            }
+        }
+
+        for (int layer = 0; layer <= best; layer++) {
+            for (int index = layerStart(layer); index < layerStart(layer + 1); index++) {
+                if (pathsToGoal[index] > 0 && !known[index]) {
+                    knownStates.put(states.get(index).getHashKey(), best - layer, pathsToGoal[index],
+                            nextMoves[index]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first state of a layer of the last search, or the
+     * number of states if the search did not get to that layer.
+     */
+    private int layerStart(int layer) {
+        return layer < layerStarts.size() ? layerStarts.get(layer) : states.size();
     }
 
     /**
-     * Returns the number of shortest paths to achieve the game objective.
+     * Returns the number of shortest paths to achieve the game objective. A
+     * path counts if it ends in any state that reaches the goal, wherever the
+     * other vehicles are in that state.
+     * 
+     * With CostModel.VEHICLES the paths within a set of vehicles can go back and
+     * forth without end, so the number of different smallest sets of vehicles
+     * that reach the goal is returned instead.
      * 
      * @return Number of shortest paths or 0 if no paths exist.
      */
-    public int getNumOfPaths() {
+    public long getNumOfPaths() {
         if (canEscape) {
-            return finalGameState.getNumShortestPaths();
+            return numOfPaths;
         } else {
             return 0;
         }
     }
+
+    /**
+     * Sets the goal that getPlan() searches for. The default goal is the truck
+     * reaching the exit, as in GameState.escaped().
+     *
+     * @param goal The new goal.
+     */
+    public void setGoal(Goal goal) {
+        this.goal = goal;
+    }
+
+    /**
+     * Shares a transposition table with other solves. getPlan() does not search
+     * past states whose distance to the goal is in the table, and adds the
+     * states on the shortest plans it finds. The table has to be of the family
+     * of the board and the goal, see TranspositionTable.familyOf(). It is only
+     * used with CostModel.CELLS.
+     *
+     * @param table The table, or null to search without one.
+     */
+    public void setTranspositionTable(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Sets what getPlan() minimizes. The default is CostModel.CELLS.
+     *
+     * @param costModel The new cost model.
+     */
+    public void setCostModel(CostModel costModel) {
+        this.costModel = costModel;
+    }
+
+    /**
+     * Returns the key of a state in the map. With CostModel.VEHICLES the set of
+     * vehicles moved so far is part of the state.
+     */
+    private HashKey keyOf(GameState gameState) {
+        if (costModel == CostModel.VEHICLES) {
+            return new HashKey(gameState.getGrid(), gameState.getMovedVehicles());
+        }
+        return gameState.getHashKey();
+    }
+
+    /**
+     * Counts the states reachable from the initial state, including the initial
+     * state itself. Unlike getPlan() the search does not stop at an escaped
+     * state. It is used to rate how large a puzzle is. The search reuses the map
+     * of getPlan(), so the plan has to be taken before calling this method.
+     *
+     * @return Number of distinct reachable states.
+     */
+    public int countReachableStates() {
+        clearSearch();
+        addState(initialGameState, initialGameState.getHashKey(), -1);
+        currentLayer[0] = initialGameState.getIndex();
+        int currentSize = 1;
+        while (currentSize > 0) {
+            int nextSize = 0;
+            for (int i = 0; i < currentSize; i++) {
+                for (GameState neighbor : states.get(currentLayer[i]).getNeighbors()) {
+                    HashKey neighborsHashKey = neighbor.getHashKey();
+                    if (!map.containsKey(neighborsHashKey)) {
+                        addState(neighbor, neighborsHashKey, currentLayer[i]);
+                        if (nextSize == nextLayer.length) {
+                            growLayers();
+                        }
+                        nextLayer[nextSize++] = neighbor.getIndex();
+                    }
+                }
+            }
+            swapLayers();
+            currentSize = nextSize;
+        }
+        return states.size();
+    }
+
+    /**
+     * Forgets the states found by the previous search. The layer arrays are kept
+     * for the next search.
+     */
+    private void clearSearch() {
+        map.clear();
+        states.clear();
+    }
+
+    /**
+     * Records a newly found state and gives it the next index.
+     *
+     * @param gameState   The new state.
+     * @param hashKey     The key of the state in the map.
+     * @param parentIndex The index of the state it was found from, or -1.
+     */
+    private void addState(GameState gameState, HashKey hashKey, int parentIndex) {
+        gameState.setIndex(states.size());
+        gameState.setParentIndex(parentIndex);
+        states.add(gameState);
+        map.put(hashKey, gameState);
+    }
+
+    /**
+     * Makes the current layer the next one and the other way around.
+     */
+    private void swapLayers() {
+        int[] swap = currentLayer;
+        currentLayer = nextLayer;
+        nextLayer = swap;
+        long[] swapCounts = currentCounts;
+        currentCounts = nextCounts;
+        nextCounts = swapCounts;
+    }
+
+    /**
+     * Doubles the capacity of both layers.
+     */
+    private void growLayers() {
+        int capacity = nextLayer.length * 2;
+        currentLayer = Arrays.copyOf(currentLayer, capacity);
+        currentCounts = Arrays.copyOf(currentCounts, capacity);
+        nextLayer = Arrays.copyOf(nextLayer, capacity);
+        nextCounts = Arrays.copyOf(nextCounts, capacity);
+    }
 }
 
 /**
@@ -203,7 +666,19 @@ class GameState {
     /**
      * Count of shortest paths leading up to this state.
      */
-    private int numShortestPaths;
+    private long numShortestPaths;
+    /**
+     * Position of this state in the order the search found it.
+     */
+    private int index;
+    /**
+     * Index of the state this state was found from, or -1 for the initial state.
+     */
+    private int parentIndex = -1;
+    /**
+     * Bit i is set if vehicle i has moved on the way to this state.
+     */
+    private int movedVehicles;
     /**
      * The value given to an empty cell in the grid
      */
@@ -219,7 +694,7 @@ class GameState {
      * @param initialNumShortestPaths Initial count of shortest paths.
      */
     public GameState(ArrayList<Vehicle> initialVehicles, int initialLayer, Pair initialPathPairs,
-            int initialNumShortestPaths) {
+            long initialNumShortestPaths) {
         vehicles = initialVehicles;
         layer = initialLayer;
         pathPair = initialPathPairs;
@@ -237,23 +712,27 @@ class GameState {
      * @param pair   Represents a move or transition from the parent state.
      */
     public GameState(GameState parent, Pair pair) {
-        ArrayList<Vehicle> parentVehicles = parent.vehicles;
-        vehicles = new ArrayList<Vehicle>();
-        Vehicle newVehicle;
-        for (Vehicle curVehicle : parentVehicles) {
-            if (curVehicle.getID() == pair.getId()) {
-                newVehicle = curVehicle.changeDirection(pair.getDirection());
-            } else {
-                newVehicle = new Vehicle(curVehicle);
+        // vehicles are immutable, so only the moved one is replaced
+        vehicles = new ArrayList<Vehicle>(parent.vehicles);
+        grid = parent.grid.clone();
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle oldVehicle = vehicles.get(i);
+            if (oldVehicle.getID() == pair.getId()) {
+                Vehicle newVehicle = oldVehicle.changeDirection(pair.getDirection());
+                vehicles.set(i, newVehicle);
+                for (int j = 0; j < oldVehicle.getLength(); j++) {
+                    grid[oldVehicle.getLocationAt(j) - 1] = EMPTYCELL;
+                }
+                for (int j = 0; j < newVehicle.getLength(); j++) {
+                    grid[newVehicle.getLocationAt(j) - 1] = newVehicle.getID();
+                }
+                break;
             }
-            this.vehicles.add(newVehicle);
         }
         layer = parent.getLayer() + 1;
         pathPair = pair;
         numShortestPaths = parent.getNumShortestPaths();
-        makeGrid();
-        setGrid(grid);
-        this.addVehiclesToGrid(this.vehicles);
+        movedVehicles = parent.movedVehicles | (1 << pair.getId());
     }
 
     /**
@@ -414,12 +893,67 @@ class GameState {
         this.layer = newLevel;
     }
 
+    /**
+     * Gets the index
+     * 
+     * @return The position in the order the search found the state
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Sets the index
+     * 
+     * @param newIndex
+     */
+    public void setIndex(int newIndex) {
+        this.index = newIndex;
+    }
+
+    /**
+     * Gets the parent index
+     * 
+     * @return The index of the state this state was found from, or -1
+     */
+    public int getParentIndex() {
+        return this.parentIndex;
+    }
+
+    /**
+     * Sets the parent index
+     * 
+     * @param newParentIndex
+     */
+    public void setParentIndex(int newParentIndex) {
+        this.parentIndex = newParentIndex;
+    }
+
+    /**
+     * Gets the vehicles moved so far
+     * 
+     * @return A bit set of the ids of the vehicles that have moved
+     */
+    public int getMovedVehicles() {
+        return this.movedVehicles;
+    }
+
+    /**
+     * Checks if a vehicle has moved on the way to this state
+     * 
+     * @param id The id of the vehicle
+     * @return True if the vehicle has moved
+     */
+    public boolean hasMoved(int id) {
+        return (this.movedVehicles & (1 << id)) != 0;
+    }
+
     /*
      * gets the NumShortestPaths
      * 
      * @return The Number of Shortest Paths
      */
-    public int getNumShortestPaths() {
+    public long getNumShortestPaths() {
         return this.numShortestPaths;
     }
 
@@ -428,7 +962,7 @@ class GameState {
      * 
      * @param newNumShortestPaths
      */
-    public void setNumShortestPaths(int newNumShortestPaths) {
+    public void setNumShortestPaths(long newNumShortestPaths) {
         this.numShortestPaths = newNumShortestPaths;
     }
 
@@ -450,6 +984,15 @@ class GameState {
         this.pathPair = newPair;
     }
 
+    /**
+     * Gets the vehicles of this state
+     * 
+     * @return The list of vehicles
+     */
+    public ArrayList<Vehicle> getVehicles() {
+        return this.vehicles;
+    }
+
     /*
      * grid getter
      * 
@@ -553,46 +1096,46 @@ class Pair {
  * 
  * Vehicles have the following attributes:
  * id: unique identifier for the vehicle. The Ice Cream Truck is always 0.
- * locations: stores the cells on the gamboard the vehicle sits
  * direction: stores which direction the car can move (Vertical[NS] = 0,
  * horizontal[EW] = 1);
+ * length: the number of cells the vehicle covers
+ * anchor: the north- or west-most cell on the gameboard the vehicle sits
+ * 
+ * A Vehicle is immutable. Moving it creates a new Vehicle, so the vehicles that
+ * do not move are shared between a GameState and its neighbors. The cells are
+ * derived from the anchor when needed.
  */
-class Vehicle {
-    private int id;
-    private ArrayList<Integer> locations;
-    private int direction;
-
-    /**
-     * Default constructor that initializes an empty location list for the vehicle.
-     */
-    public Vehicle() {
-        locations = new ArrayList<Integer>();
-    }
+final class Vehicle {
+    private final int id;
+    private final int direction;
+    private final int length;
+    private final int anchor;
 
     /**
-     * Constructor to initialize a vehicle with a given ID, locations, and
-     * direction.
+     * Constructor to initialize a vehicle with a given ID, direction, length and
+     * anchor.
      * 
      * @param id        The unique ID for the vehicle.
-     * @param locations The list of locations occupied by the vehicle.
      * @param direction The direction in which the vehicle can move.
+     * @param length    The number of cells the vehicle covers.
+     * @param anchor    The north- or west-most location of the vehicle.
      */
-    public Vehicle(int id, ArrayList<Integer> locations, int direction) {
+    public Vehicle(int id, int direction, int length, int anchor) {
         this.id = id;
-        this.locations = locations;
         this.direction = direction;
+        this.length = length;
+        this.anchor = anchor;
     }
 
     /**
-     * Copy constructor to create a new vehicle instance with attributes copied from
-     * an existing vehicle.
+     * Constructor to initialize a vehicle from the locations it occupies. The
+     * direction is derived from the first two locations.
      * 
-     * @param lastVehicle The vehicle instance to copy attributes from.
+     * @param id        The unique ID for the vehicle.
+     * @param locations The locations occupied by the vehicle, from north or west.
      */
-    public Vehicle(Vehicle lastVehicle) {
-        this.id = lastVehicle.id;
-        this.locations = lastVehicle.locations;
-        this.direction = lastVehicle.direction;
+    public Vehicle(int id, int[] locations) {
+        this(id, (locations[0] - locations[1]) % 6 == 0 ? 0 : 1, locations.length, locations[0]);
     }
 
     /**
@@ -603,30 +1146,15 @@ class Vehicle {
      * @return A new vehicle instance that represents the moved vehicle.
      */
     public Vehicle changeDirection(char direction) {
-        ArrayList<Integer> newLocs = new ArrayList<Integer>();
         switch (direction) {
             case 'n':
-                for (int location : this.getAllLocations()) {
-                    newLocs.add(location - 6);
-                }
-                return new Vehicle(this.getID(), newLocs, this.getDirection());
+                return new Vehicle(this.id, this.direction, this.length, this.anchor - 6);
             case 's':
-                for (int location : this.getAllLocations()) {
-                    newLocs.add(location + 6);
-                }
-                return new Vehicle(this.getID(), newLocs, this.getDirection());
-
+                return new Vehicle(this.id, this.direction, this.length, this.anchor + 6);
             case 'e':
-                for (int location : this.getAllLocations()) {
-                    newLocs.add(location + 1);
-                }
-                return new Vehicle(this.getID(), newLocs, this.getDirection());
-
+                return new Vehicle(this.id, this.direction, this.length, this.anchor + 1);
             case 'w':
-                for (int location : this.getAllLocations()) {
-                    newLocs.add(location - 1);
-                }
-                return new Vehicle(this.getID(), newLocs, this.getDirection());
+                return new Vehicle(this.id, this.direction, this.length, this.anchor - 1);
         }
         return null;
     }
@@ -639,18 +1167,27 @@ class Vehicle {
     }
 
     /**
-     * Updates the direction of the vehicle.
-     * 
-     * @param newDir The new direction for the vehicle.
+     * @return The number of cells the vehicle covers.
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * @return The north- or west-most location of the vehicle.
      */
-    public void setDirection(int newDir) {
-        this.direction = newDir;
+    public int getAnchor() {
+        return this.anchor;
     }
 
     /**
-     * @return The list of all locations occupied by the vehicle.
+     * @return A new array of all locations occupied by the vehicle.
      */
-    public ArrayList<Integer> getAllLocations() {
+    public int[] getAllLocations() {
+        int[] locations = new int[length];
+        for (int i = 0; i < length; i++) {
+            locations[i] = getLocationAt(i);
+        }
         return locations;
     }
 
@@ -658,32 +1195,14 @@ class Vehicle {
      * @return The location occupied by the vehicle.
      */
     public int getLocationAt(int index) {
-        return locations.get(index);
+        return anchor + index * (direction == 0 ? 6 : 1);
     }
 
     /**
      * @return The last location.
      */
     public int getLastLocation() {
-        return locations.get(locations.size() - 1);
-    }
-
-    /**
-     * Sets the new locations.
-     * 
-     * @param A list of new locations
-     */
-    public void setAllLocations(ArrayList<Integer> newLocations) {
-        this.locations = newLocations;
-    }
-
-    /**
-     * Adds a location to the end of the vehicles location list
-     * 
-     * @param the new location
-     */
-    public void addLocation(int loc) {
-        locations.add(loc);
+        return getLocationAt(length - 1);
     }
 
     /*
@@ -692,24 +1211,15 @@ class Vehicle {
      */
     public void printLocations() {
         System.out.print("[");
-        for (int i = 0; i < locations.size(); i++) {
-            System.out.print(locations.get(i));
-            if (i != locations.size() - 1) {
+        for (int i = 0; i < length; i++) {
+            System.out.print(getLocationAt(i));
+            if (i != length - 1) {
                 System.out.print(" ");
             }
         }
         System.out.print("]");
     }
 
-    /*
-     * Id setter
-     * 
-     * @param the new vehicle id
-     */
-    public void setID(int newID) {
-        this.id = newID;
-    }
-
     /*
      * Id getter
      * 
@@ -735,13 +1245,18 @@ class Vehicle {
             return false;
         }
         Vehicle v2 = (Vehicle) o;
+        return (this.id == v2.id) && (this.direction == v2.direction) && (this.length == v2.length)
+                && (this.anchor == v2.anchor);
+    }
 
-        for (int i = 0; i < locations.size(); i++) {
-            if (locations.get(i) != v2.locations.get(i)) {
-                return false;
-            }
-        }
-        return (this.id == v2.id) && (this.direction == v2.direction) && (this.locations.size() == v2.locations.size());
+    /**
+     * Computes the hash code for this vehicle based on its attributes.
+     * 
+     * @return The computed hash code.
+     */
+    @Override
+    public int hashCode() {
+        return ((id * 31 + direction) * 31 + length) * 31 + anchor;
     }
 }
 
@@ -764,6 +1279,18 @@ class HashKey {
         c = inputc;
     }
 
+    /**
+     * Constructor to initialize a HashKey instance with the provided array and
+     * one more value, such as the vehicles moved so far.
+     * 
+     * @param inputc The array used for the hash key.
+     * @param extra  The value added after the array.
+     */
+    public HashKey(int[] inputc, int extra) {
+        c = Arrays.copyOf(inputc, inputc.length + 1);
+        c[inputc.length] = extra;
+    }
+
     /**
      * Determines if two HashKey instances are equal based on their internal arrays.
      * 
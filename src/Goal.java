@@ -0,0 +1,104 @@
+/**
+ * A goal of the game: one of the given vehicles covers one of the given exit
+ * locations. The default goal is the truck reaching location 18, as in
+ * GameState.escaped(). A goal is checked for every state in the search, so it
+ * is a plain class of flat values rather than a callback.
+ */
+public final class Goal {
+    static final Goal TRUCK_ESCAPES = new Goal(new int[] { 0 }, new int[] { 18 });
+
+    /**
+     * Bit i is set if vehicle i can reach the goal.
+     */
+    private final long vehicleMask;
+    /**
+     * The grid indices of the exit locations.
+     */
+    private final int[] exitCells;
+    private final String description;
+
+    /**
+     * Constructs a goal.
+     * 
+     * @param vehicleIds    The vehicles that can reach the goal.
+     * @param exitLocations The locations (from 1 to 36) that reach the goal.
+     */
+    public Goal(int[] vehicleIds, int[] exitLocations) {
+        long mask = 0;
+        for (int id : vehicleIds) {
+            if (id < 0 || id >= 64) {
+                throw new IllegalArgumentException("Invalid vehicle " + id);
+            }
+            mask |= 1L << id;
+        }
+        exitCells = new int[exitLocations.length];
+        for (int i = 0; i < exitLocations.length; i++) {
+            if (exitLocations[i] < 1 || exitLocations[i] > 36) {
+                throw new IllegalArgumentException("Invalid location " + exitLocations[i]);
+            }
+            exitCells[i] = exitLocations[i] - 1;
+        }
+        vehicleMask = mask;
+        description = join(vehicleIds) + ":" + join(exitLocations);
+    }
+
+    /**
+     * Parses a goal written as vehicles:locations, both lists separated by
+     * commas, for example 0,3:18,36.
+     * 
+     * @param text The goal description.
+     * @return The goal.
+     */
+    public static Goal parse(String text) {
+        String[] parts = text.split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid goal " + text);
+        }
+        try {
+            return new Goal(split(parts[0]), split(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid goal " + text);
+        }
+    }
+
+    /**
+     * Checks if the goal is reached on a grid.
+     * 
+     * @param grid The grid of a state.
+     * @return True if one of the vehicles covers one of the exit cells.
+     */
+    public boolean reached(int[] grid) {
+        for (int cell : exitCells) {
+            int id = grid[cell];
+            if (id >= 0 && id < 64 && ((vehicleMask >>> id) & 1) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] split(String list) {
+        String[] strEl = list.split(",");
+        int[] values = new int[strEl.length];
+        for (int i = 0; i < strEl.length; i++) {
+            values[i] = Integer.parseInt(strEl[i].trim());
+        }
+        return values;
+    }
+
+    private static String join(int[] values) {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            output.append(i == 0 ? "" : ",").append(values[i]);
+        }
+        return output.toString();
+    }
+
+    /**
+     * @return The goal in the format read by parse().
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,379 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates random valid game boards and rates them by the length of the
+ * optimal plan, the number of shortest plans and the number of reachable
+ * states. Only boards that fall into one of the requested difficulty bands are
+ * kept. Every worker thread owns one GameBoard that is reused for all the boards
+ * it rates.
+ *
+ * Usage: java PuzzleGenerator [--attempts n] [--vehicles min-max] outputDir
+ * boardsPerBand [threads] [band ...]
+ * where a band is written as name:minMoves-maxMoves, for example hard:26-40.
+ * Each kept board is written in the input format to outputDir/name/name-N.txt
+ * and its rating is added to outputDir/ratings.csv. --attempts stops the run
+ * after n boards have been generated even if some band is not full, and
+ * --vehicles sets the range of the number of vehicles on a board.
+ */
+public class PuzzleGenerator {
+    /**
+     * Number of cells in a row or a column of the board.
+     */
+    private static final int ROW_LENGTH = 6;
+    /**
+     * The row (counted from 0) the truck sits on. The exit is at its east end.
+     */
+    private static final int EXIT_ROW = 2;
+    /**
+     * The bands used when none are given on the command line. Moves are single
+     * cell moves, as returned by GameBoard.getPlan().
+     */
+    private static final String[] DEFAULT_BANDS = { "easy:8-15", "medium:16-25", "hard:26-40", "expert:41-1000" };
+
+    private final Path outputDir;
+    private final ArrayList<Band> bands;
+    private final int threads;
+    private int minVehicles = 6;
+    private int maxVehicles = 13;
+    /**
+     * Upper bound on the number of boards generated over all threads, so the run
+     * ends even if a band can never be filled.
+     */
+    private long maxAttempts = Long.MAX_VALUE;
+    private final AtomicLong attempts = new AtomicLong();
+    /**
+     * The first error of a worker. The other workers stop when it is set, and
+     * run() throws it.
+     */
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private PrintWriter ratings;
+
+    public static void main(String[] args) throws Exception {
+        long maxAttempts = Long.MAX_VALUE;
+        String vehicleRange = null;
+        ArrayList<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--attempts") && i + 1 < args.length) {
+                maxAttempts = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--vehicles") && i + 1 < args.length) {
+                vehicleRange = args[++i];
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        if (positional.size() < 2) {
+            System.out.println("Usage: java PuzzleGenerator [--attempts n] [--vehicles min-max] outputDir"
+                    + " boardsPerBand [threads] [band ...]");
+            return;
+        }
+        int perBand = Integer.parseInt(positional.get(1));
+        int threads = positional.size() > 2 ? Integer.parseInt(positional.get(2))
+                : Runtime.getRuntime().availableProcessors();
+        ArrayList<Band> bands = new ArrayList<>();
+        if (positional.size() > 3) {
+            for (int i = 3; i < positional.size(); i++) {
+                bands.add(Band.parse(positional.get(i), perBand));
+            }
+        } else {
+            for (String band : DEFAULT_BANDS) {
+                bands.add(Band.parse(band, perBand));
+            }
+        }
+
+        PuzzleGenerator generator = new PuzzleGenerator(Paths.get(positional.get(0)), bands, threads);
+        generator.setMaxAttempts(maxAttempts);
+        if (vehicleRange != null) {
+            String[] range = vehicleRange.split("-");
+            if (range.length != 2) {
+                throw new IllegalArgumentException("Invalid vehicle range " + vehicleRange);
+            }
+            generator.setVehicleRange(Integer.parseInt(range[0]), Integer.parseInt(range[1]));
+        }
+        long timeStart = System.nanoTime();
+        generator.run();
+        long seconds = (System.nanoTime() - timeStart) / 1_000_000_000L;
+        for (Band band : bands) {
+            System.out.println(band.name + ": " + band.kept() + "/" + band.quota);
+        }
+        // every worker takes one attempt past the limit before it stops
+        long generated = Math.min(generator.attempts.get(), generator.maxAttempts);
+        System.out.println(generated + " boards generated in " + seconds + "s");
+    }
+
+    /**
+     * Creates a generator.
+     *
+     * @param outputDir Directory the boards and ratings.csv are written to.
+     * @param bands     The difficulty bands to fill.
+     * @param threads   Number of worker threads.
+     */
+    public PuzzleGenerator(Path outputDir, ArrayList<Band> bands, int threads) {
+        this.outputDir = outputDir;
+        this.bands = bands;
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the range of the number of vehicles (truck included) on a board.
+     *
+     * @param min Smallest number of vehicles.
+     * @param max Largest number of vehicles.
+     */
+    public void setVehicleRange(int min, int max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Invalid vehicle range " + min + "-" + max);
+        }
+        minVehicles = min;
+        maxVehicles = max;
+    }
+
+    /**
+     * Limits the number of boards generated in total.
+     *
+     * @param maxAttempts The limit.
+     */
+    public void setMaxAttempts(long maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Generates and rates boards on all worker threads until every band is
+     * full or the attempt limit is reached.
+     *
+     * @throws IOException          If the output can not be written, by this
+     *                              thread or by a worker.
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     */
+    public void run() throws IOException, InterruptedException {
+        for (Band band : bands) {
+            Files.createDirectories(outputDir.resolve(band.name));
+        }
+        try (PrintWriter writer = new PrintWriter(
+                new BufferedWriter(new FileWriter(outputDir.resolve("ratings.csv").toFile())), true)) {
+            ratings = writer;
+            ratings.println("file,moves,paths,states");
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++) {
+                pool.execute(this::work);
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * The loop of one worker thread.
+     */
+    private void work() {
+        GameBoard board = new GameBoard(); // reused for every board of this thread
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (failure.get() == null && !allBandsFull() && attempts.incrementAndGet() <= maxAttempts) {
+            ArrayList<Vehicle> vehicles = randomVehicles(random);
+            board.setVehicles(vehicles);
+            int moves = board.getPlan().size();
+            if (moves == 0) { // no plan possible
+                continue;
+            }
+            long paths = board.getNumOfPaths();
+            Band band = findBand(moves, paths);
+            if (band == null) {
+                continue;
+            }
+            int number = band.claim();
+            if (number < 0) { // another thread filled the band meanwhile
+                continue;
+            }
+            // counting the states is the most expensive part, so only do it for kept boards
+            int states = board.countReachableStates();
+            try {
+                save(band, number, vehicles, moves, paths, states);
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds a random valid board. The truck is horizontal on the exit row and
+     * not yet at the exit. Other vehicles have a length of 2 or 3 and do not
+     * overlap. No horizontal vehicle is placed east of the truck on the exit
+     * row, since the truck could never escape then.
+     *
+     * @param random The random number generator of the calling thread.
+     * @return The vehicles of the board. Vehicle 0 is the truck.
+     */
+    ArrayList<Vehicle> randomVehicles(ThreadLocalRandom random) {
+        int numVehicles = random.nextInt(minVehicles, maxVehicles + 1);
+        ArrayList<Vehicle> vehicles = new ArrayList<>(numVehicles);
+        boolean[] occupied = new boolean[ROW_LENGTH * ROW_LENGTH];
+
+        int truckColumn = random.nextInt(ROW_LENGTH - 2); // not in the last two columns
+        vehicles.add(makeVehicle(0, EXIT_ROW * ROW_LENGTH + truckColumn, 2, 1, occupied));
+
+        int tries = 0;
+        while (vehicles.size() < numVehicles && tries < 100) {
+            tries++;
+            int length = random.nextInt(4) == 0 ? 3 : 2;
+            int direction = random.nextInt(2); // vertical:0 horizontal:1
+            int row;
+            int column;
+            if (direction == 1) {
+                row = random.nextInt(ROW_LENGTH);
+                column = random.nextInt(ROW_LENGTH - length + 1);
+                if (row == EXIT_ROW && column > truckColumn) {
+                    continue;
+                }
+            } else {
+                row = random.nextInt(ROW_LENGTH - length + 1);
+                column = random.nextInt(ROW_LENGTH);
+            }
+            int first = row * ROW_LENGTH + column;
+            int step = direction == 1 ? 1 : ROW_LENGTH;
+            boolean free = true;
+            for (int i = 0; i < length; i++) {
+                if (occupied[first + i * step]) {
+                    free = false;
+                    break;
+                }
+            }
+            if (free) {
+                vehicles.add(makeVehicle(vehicles.size(), first, length, direction, occupied));
+            }
+        }
+        return vehicles;
+    }
+
+    /**
+     * Creates a vehicle and marks its cells as occupied.
+     *
+     * @param id        The id of the vehicle.
+     * @param first     The grid index (from 0) of its first cell.
+     * @param length    The number of cells of the vehicle.
+     * @param direction vertical:0 horizontal:1
+     * @param occupied  The occupied cells of the board.
+     * @return The new vehicle.
+     */
+    private static Vehicle makeVehicle(int id, int first, int length, int direction, boolean[] occupied) {
+        int step = direction == 1 ? 1 : ROW_LENGTH;
+        for (int i = 0; i < length; i++) {
+            occupied[first + i * step] = true;
+        }
+        return new Vehicle(id, direction, length, first + 1); // locations are numbered from 1
+    }
+
+    /**
+     * Finds a band that is not full yet and accepts the given rating.
+     *
+     * @return The band or null if there is none.
+     */
+    private Band findBand(int moves, long paths) {
+        for (Band band : bands) {
+            if (band.accepts(moves, paths)) {
+                return band;
+            }
+        }
+        return null;
+    }
+
+    private boolean allBandsFull() {
+        for (Band band : bands) {
+            if (!band.isFull()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a kept board in the input format and records its rating.
+     */
+    private void save(Band band, int number, ArrayList<Vehicle> vehicles, int moves, long paths, int states)
+            throws IOException {
+        String fileName = band.name + "-" + number + ".txt";
+        Files.writeString(outputDir.resolve(band.name).resolve(fileName), GameBoard.toInputFormat(vehicles));
+        synchronized (ratings) {
+            ratings.println(band.name + "/" + fileName + "," + moves + "," + paths + "," + states);
+        }
+    }
+
+    /**
+     * A difficulty band. A board belongs to it if the length of its optimal plan
+     * is between minMoves and maxMoves and it has at most maxPaths shortest
+     * plans, counted over all escaped states as in GameBoard.getNumOfPaths().
+     * Fewer shortest plans make a board harder to solve.
+     */
+    static class Band {
+        final String name;
+        final int minMoves;
+        final int maxMoves;
+        final long maxPaths;
+        final int quota;
+        private final AtomicInteger kept = new AtomicInteger();
+
+        Band(String name, int minMoves, int maxMoves, long maxPaths, int quota) {
+            this.name = name;
+            this.minMoves = minMoves;
+            this.maxMoves = maxMoves;
+            this.maxPaths = maxPaths;
+            this.quota = quota;
+        }
+
+        /**
+         * Parses a band written as name:minMoves-maxMoves or
+         * name:minMoves-maxMoves:maxPaths.
+         *
+         * @param text  The band description.
+         * @param quota Number of boards to keep for the band.
+         * @return The band.
+         */
+        static Band parse(String text, int quota) {
+            String[] parts = text.split(":");
+            String[] moves = parts.length > 1 ? parts[1].split("-") : new String[0];
+            if (parts.length > 3 || moves.length != 2) {
+                throw new IllegalArgumentException("Invalid band " + text);
+            }
+            long maxPaths = parts.length == 3 ? Long.parseLong(parts[2]) : Long.MAX_VALUE;
+            return new Band(parts[0], Integer.parseInt(moves[0]), Integer.parseInt(moves[1]), maxPaths, quota);
+        }
+
+        boolean accepts(int moves, long paths) {
+            return moves >= minMoves && moves <= maxMoves && paths <= maxPaths && !isFull();
+        }
+
+        boolean isFull() {
+            return kept.get() >= quota;
+        }
+
+        int kept() {
+            return Math.min(kept.get(), quota);
+        }
+
+        /**
+         * Reserves a place in the band.
+         *
+         * @return The number of the reserved place, or -1 if the band is full.
+         */
+        int claim() {
+            int number = kept.getAndIncrement();
+            return number < quota ? number : -1;
+        }
+    }
+}
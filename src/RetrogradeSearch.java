@@ -0,0 +1,320 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Finds the hardest starting configurations of a family of boards. A family is
+ * a set of vehicles with fixed lengths and lanes (the row of a horizontal
+ * vehicle or the column of a vertical one); its members differ only in where
+ * each vehicle sits in its lane.
+ *
+ * The search starts from every escaped state of the family and runs a BFS
+ * backwards, one layer per move. Since every move can be undone, the layer a
+ * state is found in is the length of its optimal plan, and the last layer holds
+ * the states that are farthest from escaping. States are packed into a single
+ * number (the position of every vehicle in its lane, in mixed radix), so
+ * visited states and the layers are plain bitsets of the whole configuration
+ * space.
+ *
+ * Usage: java RetrogradeSearch [-k examples] file ...
+ * Every file is a board in the input format; only the lengths and lanes of its
+ * vehicles are used.
+ */
+public class RetrogradeSearch {
+    private static final int ROW_LENGTH = 6;
+    /**
+     * Grid index (from 0) of the exit cell, see GameState.escaped().
+     */
+    private static final int EXIT_CELL = 17;
+
+    private final int numVehicles;
+    private final int[] lengths;
+    /**
+     * vertical:0 horizontal:1, as in Vehicle.
+     */
+    private final int[] directions;
+    /**
+     * The row of a horizontal vehicle or the column of a vertical vehicle.
+     */
+    private final int[] lanes;
+    /**
+     * Number of positions of each vehicle in its lane.
+     */
+    private final int[] radix;
+    /**
+     * Value of one position step of each vehicle in a packed state.
+     */
+    private final long[] multiplier;
+    /**
+     * cellMasks[v][p] has a bit set for every grid cell vehicle v occupies at
+     * position p.
+     */
+    private final long[][] cellMasks;
+    private final long numStates;
+
+    private long[] visited;
+    private long[] lastLayer;
+    private int maxDistance = -1;
+    private ArrayList<Long> layerSizes = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        int examples = 3;
+        int first = 0;
+        if (args.length > 1 && args[0].equals("-k")) {
+            examples = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        if (first == args.length) {
+            System.out.println("Usage: java RetrogradeSearch [-k examples] file ...");
+            return;
+        }
+        for (int i = first; i < args.length; i++) {
+            GameBoard gameBoard = new GameBoard();
+            gameBoard.readInput(args[i]);
+            RetrogradeSearch search = new RetrogradeSearch(gameBoard.initialGameState.getVehicles());
+
+            long timeStart = System.nanoTime();
+            search.run();
+            long millis = (System.nanoTime() - timeStart) / 1_000_000L;
+
+            System.out.println(args[i] + ": " + search.getNumStates() + " configurations, "
+                    + search.getNumSolvable() + " solvable, searched in " + millis + "ms");
+            ArrayList<Long> sizes = search.getLayerSizes();
+            for (int distance = 0; distance < sizes.size(); distance++) {
+                System.out.println("  " + distance + " " + sizes.get(distance));
+            }
+            if (search.getNumSolvable() == 0) {
+                System.out.println("No configuration escapes");
+                continue;
+            }
+            System.out.println("Longest optimal plan: " + search.getMaxDistance() + " moves, "
+                    + search.getNumFarthest() + " configurations");
+            for (ArrayList<Vehicle> vehicles : search.getFarthest(examples)) {
+                System.out.print(GameBoard.toInputFormat(vehicles));
+                System.out.println();
+            }
+        }
+    }
+
+    /**
+     * Sets up the family of the given vehicles. Their current locations are
+     * only used to find their lanes.
+     *
+     * @param vehicles The vehicles of the family. Vehicle 0 is the truck and
+     *                 has to be horizontal on the exit row.
+     */
+    public RetrogradeSearch(ArrayList<Vehicle> vehicles) {
+        numVehicles = vehicles.size();
+        lengths = new int[numVehicles];
+        directions = new int[numVehicles];
+        lanes = new int[numVehicles];
+        radix = new int[numVehicles];
+        multiplier = new long[numVehicles];
+        cellMasks = new long[numVehicles][];
+
+        long size = 1;
+        for (int v = 0; v < numVehicles; v++) {
+            Vehicle vehicle = vehicles.get(v);
+            int first = vehicle.getAnchor() - 1;
+            lengths[v] = vehicle.getLength();
+            directions[v] = vehicle.getDirection();
+            lanes[v] = directions[v] == 1 ? first / ROW_LENGTH : first % ROW_LENGTH;
+            radix[v] = ROW_LENGTH - lengths[v] + 1;
+            multiplier[v] = size;
+            size *= radix[v];
+            if (size > 64L * (Integer.MAX_VALUE - 8)) {
+                throw new IllegalArgumentException("Too many configurations for a bitset");
+            }
+            cellMasks[v] = new long[radix[v]];
+            for (int p = 0; p < radix[v]; p++) {
+                for (int k = 0; k < lengths[v]; k++) {
+                    cellMasks[v][p] |= 1L << cellAt(v, p + k);
+                }
+            }
+        }
+        if (directions[0] != 1 || (cellMasks[0][radix[0] - 1] & (1L << EXIT_CELL)) == 0) {
+            throw new IllegalArgumentException("The truck has to be horizontal on the exit row");
+        }
+        numStates = size;
+    }
+
+    /**
+     * Returns the grid index (from 0) of the given place in the lane of a
+     * vehicle.
+     */
+    private int cellAt(int vehicle, int place) {
+        return directions[vehicle] == 1 ? lanes[vehicle] * ROW_LENGTH + place : place * ROW_LENGTH + lanes[vehicle];
+    }
+
+    /**
+     * Runs the backward BFS over the whole family.
+     */
+    public void run() {
+        int words = (int) ((numStates + 63) / 64);
+        visited = new long[words];
+        long[] current = new long[words];
+        long[] next = new long[words];
+        layerSizes = new ArrayList<>();
+
+        // layer 0: the truck at the exit and every placement of the other vehicles
+        int[] positions = new int[numVehicles];
+        positions[0] = radix[0] - 1;
+        long count = addGoalStates(1, cellMasks[0][positions[0]], positions, current);
+
+        int[] move = new int[] { -1, 1 };
+        int distance = 0;
+        while (count > 0) {
+            layerSizes.add(count);
+            maxDistance = distance;
+            count = 0;
+            for (int w = 0; w < words; w++) {
+                long bits = current[w];
+                while (bits != 0) {
+                    long state = ((long) w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    long occupied = 0;
+                    long rest = state;
+                    for (int v = 0; v < numVehicles; v++) {
+                        positions[v] = (int) (rest % radix[v]);
+                        rest /= radix[v];
+                        occupied |= cellMasks[v][positions[v]];
+                    }
+                    for (int v = 0; v < numVehicles; v++) {
+                        long others = occupied & ~cellMasks[v][positions[v]];
+                        for (int delta : move) {
+                            int p = positions[v] + delta;
+                            if (p < 0 || p >= radix[v] || (cellMasks[v][p] & others) != 0) {
+                                continue;
+                            }
+                            long neighbor = state + delta * multiplier[v];
+                            int word = (int) (neighbor >>> 6);
+                            long bit = 1L << neighbor;
+                            if ((visited[word] & bit) == 0) {
+                                visited[word] |= bit;
+                                next[word] |= bit;
+                                count++;
+                            }
+                        }
+                    }
+                }
+            }
+            if (count > 0) {
+                long[] swap = current;
+                current = next;
+                next = swap;
+                Arrays.fill(next, 0);
+                distance++;
+            }
+        }
+        lastLayer = current;
+    }
+
+    /**
+     * Marks every placement of the vehicles from the given one on as a goal
+     * state, trying each free position of a vehicle in turn.
+     *
+     * @return The number of goal states added.
+     */
+    private long addGoalStates(int vehicle, long occupied, int[] positions, long[] layer) {
+        if (vehicle == numVehicles) {
+            long state = pack(positions);
+            visited[(int) (state >>> 6)] |= 1L << state;
+            layer[(int) (state >>> 6)] |= 1L << state;
+            return 1;
+        }
+        long count = 0;
+        for (int p = 0; p < radix[vehicle]; p++) {
+            if ((cellMasks[vehicle][p] & occupied) == 0) {
+                positions[vehicle] = p;
+                count += addGoalStates(vehicle + 1, occupied | cellMasks[vehicle][p], positions, layer);
+            }
+        }
+        return count;
+    }
+
+    private long pack(int[] positions) {
+        long state = 0;
+        for (int v = 0; v < numVehicles; v++) {
+            state += positions[v] * multiplier[v];
+        }
+        return state;
+    }
+
+    /**
+     * Builds the vehicles of a packed state.
+     */
+    private ArrayList<Vehicle> unpack(long state) {
+        ArrayList<Vehicle> vehicles = new ArrayList<>(numVehicles);
+        for (int v = 0; v < numVehicles; v++) {
+            int position = (int) (state % radix[v]);
+            state /= radix[v];
+            // locations are numbered from 1
+            vehicles.add(new Vehicle(v, directions[v], lengths[v], cellAt(v, position) + 1));
+        }
+        return vehicles;
+    }
+
+    /**
+     * Returns up to the given number of configurations with the longest optimal
+     * plan. run() has to be called first.
+     *
+     * @param limit Largest number of configurations to return.
+     * @return The vehicles of each configuration.
+     */
+    public ArrayList<ArrayList<Vehicle>> getFarthest(int limit) {
+        ArrayList<ArrayList<Vehicle>> farthest = new ArrayList<>();
+        for (int w = 0; w < lastLayer.length && farthest.size() < limit; w++) {
+            long bits = lastLayer[w];
+            while (bits != 0 && farthest.size() < limit) {
+                farthest.add(unpack(((long) w << 6) + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * @return The length of the longest optimal plan in the family, or -1 if no
+     *         configuration escapes.
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * @return The number of configurations with the longest optimal plan, or 0
+     *         if no configuration escapes.
+     */
+    public long getNumFarthest() {
+        if (layerSizes.isEmpty()) {
+            return 0;
+        }
+        return layerSizes.get(layerSizes.size() - 1);
+    }
+
+    /**
+     * @return The number of configurations from which the truck can escape.
+     */
+    public long getNumSolvable() {
+        long total = 0;
+        for (long size : layerSizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * @return The number of packed states, including those where vehicles
+     *         overlap.
+     */
+    public long getNumStates() {
+        return numStates;
+    }
+
+    /**
+     * @return The number of configurations at each distance from escaping.
+     */
+    public ArrayList<Long> getLayerSizes() {
+        return layerSizes;
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Times GameBoard.getPlan() on the given boards, or on the bundled boards if
+ * none are given. Every board is solved a number of times first so the JIT has
+ * compiled the search before it is measured, and the fastest of a few rounds
+ * is reported.
+ *
+ * As a baseline the same boards are also solved with the search getPlan() used
+ * before it ran on layer arrays: a LinkedList queue of GameStates, with the
+ * plan found by undoing moves and looking the states up in the map. Like
+ * getPlan() it counts the shortest paths to every escaped state of the goal
+ * layer, and both searches have to agree on the length of the plan and that
+ * count.
+ *
+ * Usage: java SolveBenchmark [file ...]
+ */
+public class SolveBenchmark {
+    private static final String[] BUNDLED_BOARDS = { "src/1.txt", "src/2.txt", "src/11.txt", "src/21.txt" };
+    private static final int WARMUP = 200;
+    private static final int RUNS = 100;
+    /**
+     * Number of times RUNS solves are timed; the fastest time is reported.
+     */
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        String[] fileNames = args.length > 0 ? args : BUNDLED_BOARDS;
+        GameBoard gameBoard = new GameBoard();
+        for (String fileName : fileNames) {
+            gameBoard.readInput(fileName);
+            QueueSearch baseline = new QueueSearch(gameBoard.initialGameState);
+            int moves = 0;
+            for (int i = 0; i < WARMUP; i++) {
+                moves = gameBoard.getPlan().size();
+                baseline.getPlan();
+            }
+            // the searches take turns so both see the same state of the JIT and the heap
+            double layered = Double.MAX_VALUE;
+            double queued = Double.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long timeStart = System.nanoTime();
+                for (int i = 0; i < RUNS; i++) {
+                    gameBoard.getPlan();
+                }
+                layered = Math.min(layered, (System.nanoTime() - timeStart) / 1000.0 / RUNS);
+                timeStart = System.nanoTime();
+                for (int i = 0; i < RUNS; i++) {
+                    baseline.getPlan();
+                }
+                queued = Math.min(queued, (System.nanoTime() - timeStart) / 1000.0 / RUNS);
+            }
+
+            gameBoard.getPlan();
+            if (baseline.getPlan().size() != moves || baseline.getNumOfPaths() != gameBoard.getNumOfPaths()) {
+                throw new IllegalStateException(fileName + ": the baseline search disagrees");
+            }
+            System.out.printf("%s: %d moves, %d paths, %.1f us per solve (LinkedList queue: %.1f us)%n", fileName,
+                    moves, gameBoard.getNumOfPaths(), layered, queued);
+        }
+    }
+
+    /**
+     * The breadth first search of getPlan() with a LinkedList queue, kept only
+     * to compare against.
+     */
+    private static class QueueSearch {
+        private final GameState initialGameState;
+        private final HashMap<HashKey, GameState> map = new HashMap<>();
+        private GameState finalGameState;
+        private long numOfPaths;
+
+        QueueSearch(GameState initialGameState) {
+            this.initialGameState = initialGameState;
+        }
+
+        ArrayList<Pair> getPlan() {
+            Queue<GameState> queue = new LinkedList<GameState>();
+            map.clear();
+            finalGameState = null;
+            numOfPaths = 0;
+            queue.add(initialGameState);
+            map.put(initialGameState.getHashKey(), initialGameState);
+            while (!queue.isEmpty()) {
+                GameState visitedGameState = queue.remove();
+                if (visitedGameState.escaped()) {
+                    finalGameState = visitedGameState;
+                    break;
+                }
+                for (GameState neighbor : visitedGameState.getNeighbors()) {
+                    HashKey neighborsHashKey = neighbor.getHashKey();
+                    GameState sameGameState = map.get(neighborsHashKey);
+                    if (sameGameState == null) {
+                        map.put(neighborsHashKey, neighbor);
+                        queue.add(neighbor);
+                    } else if (sameGameState.getLayer() == neighbor.getLayer()) {
+                        sameGameState.setNumShortestPaths(
+                                sameGameState.getNumShortestPaths() + neighbor.getNumShortestPaths());
+                    }
+                }
+            }
+            if (finalGameState != null) {
+                // the rest of the goal layer is complete, and its escaped states end shortest paths too
+                numOfPaths = finalGameState.getNumShortestPaths();
+                for (GameState gameState : queue) {
+                    if (gameState.getLayer() == finalGameState.getLayer() && gameState.escaped()) {
+                        numOfPaths += gameState.getNumShortestPaths();
+                    }
+                }
+            }
+            ArrayList<Pair> plan = new ArrayList<Pair>();
+            GameState current = finalGameState;
+            while (current != null && current.getPathPair() != null) {
+                Pair pair = current.getPathPair();
+                plan.add(0, pair);
+                // an edge is a move, so move backwards
+                current = map.get(new GameState(current, pair.reverse()).getHashKey());
+            }
+            return plan;
+        }
+
+        /**
+         * @return The number of shortest paths to every escaped state, as
+         *         GameBoard.getNumOfPaths() counts them.
+         */
+        long getNumOfPaths() {
+            return numOfPaths;
+        }
+    }
+}
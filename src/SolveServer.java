@@ -0,0 +1,387 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small HTTP server that solves boards.
+ *
+ * POST /solve takes a board in the input format as the request body and
+ * answers with the plan, one move per line, followed by the number of shortest
+ * paths, the same as GameBoard.main prints. The optional query parameters goal
+ * (see Goal.parse) and cost (cells or vehicles) select the objective. GET
+ * /stats reports the request counts and latency histograms.
+ *
+ * Requests run on virtual threads when the JDK has them and on a cached thread
+ * pool otherwise. At most a fixed number of boards are solved at a time, each
+ * on a GameBoard taken from a pool. Requests for a board that is already being
+ * solved wait for that solve instead of starting their own. Boards of the same
+ * family share a TranspositionTable, so a request for a position reachable from
+ * an earlier one stops searching where the earlier solve left known distances.
+ * Each table keeps up to tableEntries states, and all tables together keep up
+ * to totalTableEntries, by default as many as fit in a quarter of the heap.
+ * Since a client can start a new family just by changing the vehicles or the
+ * goal, the least recently used tables are dropped to stay within that budget.
+ *
+ * Usage: java SolveServer [port] [solvers] [tableEntries] [totalTableEntries]
+ */
+public class SolveServer {
+    /**
+     * Largest accepted request body. A board is well below 1KB.
+     */
+    private static final int MAX_BODY = 16 * 1024;
+    /**
+     * Largest number of families with a transposition table, however large the
+     * budget of table entries. The least recently used table is dropped first.
+     */
+    private static final int MAX_FAMILIES = 256;
+    /**
+     * Estimated heap used by one state in a transposition table: its grid, key,
+     * entry and slot. Full tables of generated boards take 300 to 400 bytes per
+     * state.
+     */
+    private static final int BYTES_PER_ENTRY = 400;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    /**
+     * The idle solvers. A request waits here when all of them are busy.
+     */
+    private final ArrayBlockingQueue<GameBoard> solvers;
+    /**
+     * The boards being solved, by their objective and their text in the input
+     * format, and the response they will get.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private final LatencyHistogram solveLatency = new LatencyHistogram();
+    private final int tableEntries;
+    /**
+     * Largest number of tables that fit in the budget of table entries.
+     */
+    private final int maxFamilies;
+    /**
+     * The transposition tables by family, in order of last use. Guarded by
+     * itself.
+     */
+    private final LinkedHashMap<String, TranspositionTable> tables = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TranspositionTable> eldest) {
+            return size() > maxFamilies;
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int numSolvers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int tableEntries = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 16;
+        long totalTableEntries = args.length > 3 ? Long.parseLong(args[3]) : defaultTableBudget();
+        SolveServer solveServer = new SolveServer(port, numSolvers, tableEntries, totalTableEntries);
+        solveServer.start();
+        System.out.println("Listening on port " + solveServer.getPort() + " with " + numSolvers + " solvers and "
+                + solveServer.maxFamilies + " transposition tables of " + solveServer.tableEntries + " states");
+    }
+
+    /**
+     * Creates a server whose transposition tables together use at most a
+     * quarter of the heap. It does not accept requests before start() is
+     * called.
+     *
+     * @param port         The port to listen on, or 0 for any free port.
+     * @param numSolvers   Number of boards that can be solved at the same time.
+     * @param tableEntries Number of states kept in the transposition table of
+     *                     each family, or 0 to solve without tables.
+     * @throws IOException If the port can not be bound.
+     */
+    public SolveServer(int port, int numSolvers, int tableEntries) throws IOException {
+        this(port, numSolvers, tableEntries, defaultTableBudget());
+    }
+
+    /**
+     * Creates a server. It does not accept requests before start() is called.
+     *
+     * @param port              The port to listen on, or 0 for any free port.
+     * @param numSolvers        Number of boards that can be solved at the same
+     *                          time.
+     * @param tableEntries      Number of states kept in the transposition table
+     *                          of each family, or 0 to solve without tables.
+     * @param totalTableEntries Number of states kept in all tables together.
+     *                          Only as many tables as fit are kept, and a single
+     *                          table never gets more than this.
+     * @throws IOException If the port can not be bound.
+     */
+    public SolveServer(int port, int numSolvers, int tableEntries, long totalTableEntries) throws IOException {
+        this.tableEntries = (int) Math.min(tableEntries, totalTableEntries);
+        maxFamilies = this.tableEntries <= 0 ? 0 : (int) Math.min(MAX_FAMILIES, totalTableEntries / this.tableEntries);
+        solvers = new ArrayBlockingQueue<>(numSolvers);
+        for (int i = 0; i < numSolvers; i++) {
+            solvers.add(new GameBoard());
+        }
+        executor = newRequestExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * @return The number of table entries that fit in a quarter of the heap.
+     */
+    private static long defaultTableBudget() {
+        return Runtime.getRuntime().maxMemory() / 4 / BYTES_PER_ENTRY;
+    }
+
+    /**
+     * Uses a virtual thread per request if the JDK supports it (Java 21 and
+     * later), and a cached thread pool otherwise.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to the given number of seconds for
+     * running ones.
+     */
+    public void stop(int seconds) {
+        server.stop(seconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleSolve(HttpExchange exchange) throws IOException {
+        long timeStart = System.nanoTime();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, "Use POST with a board in the request body\n");
+                return;
+            }
+            String body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                rejected.incrementAndGet();
+                send(exchange, 413, "The board is too large\n");
+                return;
+            }
+            ArrayList<Vehicle> vehicles;
+            Goal goal = Goal.TRUCK_ESCAPES;
+            CostModel costModel = CostModel.CELLS;
+            try {
+                vehicles = GameBoard.readVehicles(new BufferedReader(new StringReader(body)));
+                String query = exchange.getRequestURI().getQuery();
+                for (String parameter : query == null ? new String[0] : query.split("&")) {
+                    if (parameter.startsWith("goal=")) {
+                        goal = Goal.parse(parameter.substring(5));
+                    } else if (parameter.startsWith("cost=")) {
+                        costModel = CostModel.parse(parameter.substring(5));
+                    }
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                rejected.incrementAndGet();
+                send(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+
+            // the same board may be written with different spacing, so it is keyed by its normalized text
+            String key = goal + " " + costModel + "\n" + GameBoard.toInputFormat(vehicles);
+            CompletableFuture<String> result = new CompletableFuture<>();
+            CompletableFuture<String> running = inFlight.putIfAbsent(key, result);
+            if (running == null) {
+                try {
+                    result.complete(solve(vehicles, goal, costModel));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, result);
+                }
+            } else {
+                coalesced.incrementAndGet();
+                result = running;
+            }
+
+            try {
+                send(exchange, 200, result.get());
+            } catch (ExecutionException e) {
+                send(exchange, 500, "Solving failed: " + e.getCause() + "\n");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, "Interrupted\n");
+            }
+        } finally {
+            exchange.close();
+            requestLatency.record(System.nanoTime() - timeStart);
+        }
+    }
+
+    /**
+     * Solves a board on a pooled GameBoard, waiting for one to be free.
+     *
+     * @return The response body.
+     */
+    private String solve(ArrayList<Vehicle> vehicles, Goal goal, CostModel costModel) throws InterruptedException {
+        GameBoard gameBoard = solvers.take();
+        try {
+            long timeStart = System.nanoTime();
+            gameBoard.setGoal(goal);
+            gameBoard.setCostModel(costModel);
+            gameBoard.setTranspositionTable(costModel == CostModel.CELLS ? tableFor(vehicles, goal) : null);
+            gameBoard.setVehicles(vehicles);
+            ArrayList<Pair> path = gameBoard.getPlan();
+            solveLatency.record(System.nanoTime() - timeStart);
+
+            if (gameBoard.getNumOfPaths() == 0) {
+                return "No valid path found.\n";
+            }
+            StringBuilder output = new StringBuilder();
+            for (Pair pair : path) {
+                output.append(pair.getId()).append(' ').append(pair.getDirection()).append('\n');
+            }
+            output.append(gameBoard.getNumOfPaths()).append('\n');
+            return output.toString();
+        } finally {
+            solvers.add(gameBoard);
+        }
+    }
+
+    /**
+     * Returns the transposition table of the family of a board, creating it on
+     * first use.
+     *
+     * @return The table, or null if tables are turned off.
+     */
+    private TranspositionTable tableFor(ArrayList<Vehicle> vehicles, Goal goal) {
+        if (tableEntries <= 0) {
+            return null;
+        }
+        String family = TranspositionTable.familyOf(vehicles, goal);
+        synchronized (tables) {
+            return tables.computeIfAbsent(family, key -> new TranspositionTable(key, tableEntries));
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder output = new StringBuilder();
+            output.append("coalesced ").append(coalesced.get()).append('\n');
+            output.append("rejected ").append(rejected.get()).append('\n');
+            output.append("idle solvers ").append(solvers.size()).append('\n');
+            long hits = 0;
+            long misses = 0;
+            long entries = 0;
+            synchronized (tables) {
+                output.append("table families ").append(tables.size()).append(" of ").append(maxFamilies)
+                        .append('\n');
+                for (TranspositionTable table : tables.values()) {
+                    hits += table.getHits();
+                    misses += table.getMisses();
+                    entries += table.size();
+                }
+            }
+            output.append("table entries ").append(entries).append('\n');
+            output.append("table hits ").append(hits).append('\n');
+            output.append("table misses ").append(misses).append('\n');
+            requestLatency.appendTo(output, "request");
+            solveLatency.appendTo(output, "solve");
+            send(exchange, 200, output.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads a request body as text.
+     *
+     * @return The body, or null if it is larger than MAX_BODY.
+     */
+    private static String readBody(InputStream in) throws IOException {
+        byte[] bytes = in.readNBytes(MAX_BODY + 1);
+        if (bytes.length > MAX_BODY) {
+            return null;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Counts latencies in buckets that double in size: bucket i holds the
+     * latencies from 2^(i-1) up to 2^i microseconds. Recording is lock free.
+     */
+    static class LatencyHistogram {
+        private static final int BUCKETS = 40;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            counts.incrementAndGet(bucket);
+            total.incrementAndGet();
+            max.accumulateAndGet(micros, Math::max);
+        }
+
+        /**
+         * Returns the upper bound in microseconds of the bucket holding the given
+         * fraction of the recorded latencies.
+         */
+        long percentile(double fraction) {
+            long target = (long) Math.ceil(total.get() * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= target && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        void appendTo(StringBuilder output, String name) {
+            output.append(name).append(" count ").append(total.get()).append('\n');
+            output.append(name).append(" p50<=").append(percentile(0.5)).append("us p90<=")
+                    .append(percentile(0.9)).append("us p99<=").append(percentile(0.99)).append("us max=")
+                    .append(max.get()).append("us\n");
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts.get(i) > 0) {
+                    output.append(name).append(" <=").append(1L << i).append("us ").append(counts.get(i)).append('\n');
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded table of states whose exact distance to the goal is known, shared
+ * by all solves of one puzzle family. A family is a set of vehicles with fixed
+ * ids, lengths and lanes together with a goal, so every state reachable from one
+ * board of the family is a board of the family too.
+ *
+ * For each state the table keeps the length of its shortest plan, the number
+ * of shortest plans and the first move of one of them. GameBoard.getPlan() stops
+ * searching past a state it finds in the table, and adds every state on the
+ * shortest plans it finds.
+ *
+ * The table is split into stripes by hash, each with its own lock and its own
+ * share of the capacity. When a stripe is full an entry is evicted with the
+ * clock algorithm: entries that were read since the hand last passed get a
+ * second chance.
+ */
+final class TranspositionTable {
+    private static final int STRIPES = 16;
+
+    private final String family;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates an empty table.
+     *
+     * @param family   The family of the boards, see familyOf().
+     * @param capacity Largest number of states kept.
+     */
+    TranspositionTable(String family, int capacity) {
+        this.family = family;
+        int stripeCapacity = Math.max(1, capacity / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * Describes the family of a board: the id, direction, length and lane of
+     * every vehicle, and the goal. The places of the vehicles in their lanes are
+     * left out.
+     *
+     * @param vehicles The vehicles of the board.
+     * @param goal     The goal of the search.
+     * @return The family.
+     */
+    static String familyOf(ArrayList<Vehicle> vehicles, Goal goal) {
+        StringBuilder output = new StringBuilder();
+        for (Vehicle vehicle : vehicles) {
+            int first = vehicle.getAnchor() - 1;
+            int lane = vehicle.getDirection() == 1 ? first / 6 : first % 6; // row or column
+            output.append(vehicle.getID()).append(vehicle.getDirection() == 1 ? 'h' : 'v')
+                    .append(vehicle.getLength()).append('@').append(lane).append(' ');
+        }
+        return output.append("goal ").append(goal).toString();
+    }
+
+    /**
+     * @return The family of the boards in this table.
+     */
+    String getFamily() {
+        return family;
+    }
+
+    /**
+     * Looks up a state.
+     *
+     * @param key The hash key of the state's grid.
+     * @return The entry of the state or null if it is not known.
+     */
+    Entry get(HashKey key) {
+        Entry entry = stripeOf(key).get(key);
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Adds or replaces the entry of a state, evicting another entry if needed.
+     *
+     * @param key      The hash key of the state's grid.
+     * @param distance The length of the shortest plans from the state.
+     * @param paths    The number of shortest plans from the state.
+     * @param next     The first move of a shortest plan, or null if the state
+     *                 already reaches the goal.
+     */
+    void put(HashKey key, int distance, long paths, Pair next) {
+        stripeOf(key).put(key, new Entry(distance, paths, next));
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of states in the table.
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeOf(HashKey key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * What is known about a state. Entries are never changed once created.
+     */
+    static final class Entry {
+        final int distance;
+        final long paths;
+        final Pair next;
+
+        Entry(int distance, long paths, Pair next) {
+            this.distance = distance;
+            this.paths = paths;
+            this.next = next;
+        }
+    }
+
+    /**
+     * One part of the table. The entries live in fixed slots and the clock hand
+     * goes round the slots looking for one to evict.
+     */
+    private static final class Stripe {
+        private final HashMap<HashKey, Integer> slots = new HashMap<>();
+        private final HashKey[] keys;
+        private final Entry[] entries;
+        private final boolean[] referenced;
+        private int size;
+        private int hand;
+
+        Stripe(int capacity) {
+            keys = new HashKey[capacity];
+            entries = new Entry[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        synchronized Entry get(HashKey key) {
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                return null;
+            }
+            referenced[slot] = true;
+            return entries[slot];
+        }
+
+        synchronized void put(HashKey key, Entry entry) {
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                if (size < keys.length) {
+                    slot = size++;
+                } else {
+                    while (referenced[hand]) {
+                        referenced[hand] = false;
+                        hand = (hand + 1) % keys.length;
+                    }
+                    slot = hand;
+                    hand = (hand + 1) % keys.length;
+                    slots.remove(keys[slot]);
+                }
+                keys[slot] = key;
+                slots.put(key, slot);
+            }
+            entries[slot] = entry;
+            referenced[slot] = false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}